@@ -0,0 +1,335 @@
+package committee.nova.mods.moreleads.client;
+
+import committee.nova.mods.moreleads.common.ModConfig;
+
+import java.util.Arrays;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 14:02
+ * @Description: Caches the rope vertices and light samples of leashes whose ends are not moving, so pens full of
+ * tied mobs do not rebuild the same sagging rope or look up the same four light values every frame. Plain java on
+ * purpose, nothing here touches the render system.
+ */
+public class LeashGeometryCache {
+    /**
+     * Same segment count as the vanilla rope.
+     */
+    public static final int SEGMENTS = 24;
+    public static final int VERTEX_PAIRS = (SEGMENTS + 1) * 2;
+    public static final float ROPE_WIDTH = 0.025F;
+    /**
+     * How far an end may drift (in blocks) before the rope is rebuilt.
+     */
+    public static final double EPSILON = 1.0E-3D;
+    /**
+     * How long (in game ticks) light samples are reused while neither end changes block, so a torch placed next to
+     * a still rope shows up within half a second.
+     */
+    public static final long LIGHT_REFRESH_TICKS = 10L;
+
+    // positions + shade + light, plus the fixed fields and table slots
+    static final long ENTRY_BYTES = VERTEX_PAIRS * 6L * Float.BYTES + VERTEX_PAIRS * (long) Float.BYTES
+            + VERTEX_PAIRS * (long) Integer.BYTES + 160L;
+
+    private static LeashGeometryCache instance;
+
+    private final int maxEntries;
+    private final double epsilonSqr;
+    // Open addressing on the entity id so a lookup neither boxes the key nor allocates a map entry
+    private int[] keys = new int[16];
+    private LeashGeometry[] slots = new LeashGeometry[16];
+    private int size;
+    // Most recently used first, the entries link to each other
+    private final LeashGeometry order = new LeashGeometry(0);
+    private long hits;
+    private long misses;
+
+    public LeashGeometryCache(long maxBytes, double epsilon) {
+        this.maxEntries = (int) Math.max(1L, Math.min(1 << 29, maxBytes / ENTRY_BYTES));
+        this.epsilonSqr = epsilon * epsilon;
+        this.order.prev = this.order;
+        this.order.next = this.order;
+    }
+
+    /**
+     * Gets the shared cache sized from the config, or null when the cache is disabled.
+     */
+    public static LeashGeometryCache getInstance() {
+        if (ModConfig.LEASH_GEOMETRY_CACHE_KB <= 0) {
+            return null;
+        }
+        if (instance == null) {
+            instance = new LeashGeometryCache(ModConfig.LEASH_GEOMETRY_CACHE_KB * 1024L, EPSILON);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the entry of the given leash, creating an empty one and evicting the least recently used entry if needed.
+     * Feed it light with {@link LeashGeometry#setLight} when {@link LeashGeometry#needsLight} asks for it, then call
+     * {@link #update} for the vertices.
+     *
+     * @param key Stable id of the leash, the leashed mob's entity id.
+     */
+    public LeashGeometry get(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; slots[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                LeashGeometry geometry = slots[i];
+                unlink(geometry);
+                linkFirst(geometry);
+                return geometry;
+            }
+        }
+
+        if (size >= maxEntries) {
+            remove(order.prev.key);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        LeashGeometry geometry = new LeashGeometry(key);
+        insert(geometry);
+        linkFirst(geometry);
+        size++;
+        return geometry;
+    }
+
+    /**
+     * Rebuilds the rope only if an end moved past the epsilon or the light changed since the last build.
+     *
+     * @param holderX Rope hold position of the holder.
+     * @param attachX Leash attach position on the mob.
+     * @return The rope vertices, relative to the attach position.
+     */
+    public LeashGeometry update(LeashGeometry geometry,
+                                double holderX, double holderY, double holderZ,
+                                double attachX, double attachY, double attachZ) {
+        if (geometry.matches(holderX, holderY, holderZ, attachX, attachY, attachZ, epsilonSqr)) {
+            hits++;
+            return geometry;
+        }
+        misses++;
+        geometry.build(holderX, holderY, holderZ, attachX, attachY, attachZ);
+        return geometry;
+    }
+
+    public void invalidate(int key) {
+        remove(key);
+    }
+
+    public void clear() {
+        Arrays.fill(slots, null);
+        order.prev = order;
+        order.next = order;
+        size = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private void remove(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (slots[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (slots[i] == null) {
+            return;
+        }
+        unlink(slots[i]);
+        slots[i] = null;
+        size--;
+        // Shift the rest of the run back so lookups never stop at the hole
+        for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+            int home = mix(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                slots[i] = slots[j];
+                slots[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void insert(LeashGeometry geometry) {
+        int mask = keys.length - 1;
+        int i = mix(geometry.key) & mask;
+        while (slots[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = geometry.key;
+        slots[i] = geometry;
+    }
+
+    private void resize(int capacity) {
+        LeashGeometry[] old = slots;
+        keys = new int[capacity];
+        slots = new LeashGeometry[capacity];
+        for (LeashGeometry geometry : old) {
+            if (geometry != null) {
+                insert(geometry);
+            }
+        }
+    }
+
+    private void linkFirst(LeashGeometry geometry) {
+        geometry.prev = order;
+        geometry.next = order.next;
+        order.next.prev = geometry;
+        order.next = geometry;
+    }
+
+    private static void unlink(LeashGeometry geometry) {
+        geometry.prev.next = geometry.next;
+        geometry.next.prev = geometry.prev;
+    }
+
+    // Entity ids are sequential, spread them over the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The vertices of one rope, laid out in the order vanilla emits them: the top strip from the mob to the holder,
+     * then the side strip back. Each pair shares a shade and a packed light value.
+     */
+    public static class LeashGeometry {
+        public final float[] positions = new float[VERTEX_PAIRS * 6];
+        public final float[] shades = new float[VERTEX_PAIRS];
+        public final int[] lights = new int[VERTEX_PAIRS];
+
+        private final int key;
+        private LeashGeometry prev, next;
+
+        private boolean built;
+        private double holderX, holderY, holderZ;
+        private double attachX, attachY, attachZ;
+        // Light as sampled, and as baked into the vertices
+        private boolean sampled;
+        private long entityPos, holderPos, lightTime;
+        private int entityBlock, holderBlock, entitySky, holderSky;
+        private int builtEntityBlock, builtHolderBlock, builtEntitySky, builtHolderSky;
+
+        LeashGeometry(int key) {
+            this.key = key;
+        }
+
+        /**
+         * Whether the light has to be looked up again: an end moved to another block, or the samples are older than
+         * {@link #LIGHT_REFRESH_TICKS}.
+         *
+         * @param entityPos Packed block position of the mob's eyes.
+         * @param holderPos Packed block position of the holder's eyes.
+         * @param time      Game time of the frame.
+         */
+        public boolean needsLight(long entityPos, long holderPos, long time) {
+            return !sampled || this.entityPos != entityPos || this.holderPos != holderPos
+                    || time - lightTime >= LIGHT_REFRESH_TICKS || time < lightTime;
+        }
+
+        public void setLight(long entityPos, long holderPos, long time,
+                             int entityBlock, int holderBlock, int entitySky, int holderSky) {
+            this.sampled = true;
+            this.entityPos = entityPos;
+            this.holderPos = holderPos;
+            this.lightTime = time;
+            this.entityBlock = entityBlock;
+            this.holderBlock = holderBlock;
+            this.entitySky = entitySky;
+            this.holderSky = holderSky;
+        }
+
+        boolean matches(double holderX, double holderY, double holderZ,
+                        double attachX, double attachY, double attachZ, double epsilonSqr) {
+            return built
+                    && builtEntityBlock == entityBlock && builtHolderBlock == holderBlock
+                    && builtEntitySky == entitySky && builtHolderSky == holderSky
+                    && distanceSqr(this.holderX - holderX, this.holderY - holderY, this.holderZ - holderZ) <= epsilonSqr
+                    && distanceSqr(this.attachX - attachX, this.attachY - attachY, this.attachZ - attachZ) <= epsilonSqr;
+        }
+
+        // Mirrors MobRenderer#renderLeash and MobRenderer#addVertexPair
+        void build(double holderX, double holderY, double holderZ,
+                   double attachX, double attachY, double attachZ) {
+            this.built = true;
+            this.holderX = holderX;
+            this.holderY = holderY;
+            this.holderZ = holderZ;
+            this.attachX = attachX;
+            this.attachY = attachY;
+            this.attachZ = attachZ;
+            this.builtEntityBlock = entityBlock;
+            this.builtHolderBlock = holderBlock;
+            this.builtEntitySky = entitySky;
+            this.builtHolderSky = holderSky;
+
+            float dx = (float) (holderX - attachX);
+            float dy = (float) (holderY - attachY);
+            float dz = (float) (holderZ - attachZ);
+            float width = invSqrt(dx * dx + dz * dz) * ROPE_WIDTH / 2.0F;
+            float offsetX = dz * width;
+            float offsetZ = dx * width;
+
+            int pair = 0;
+            for (int i = 0; i <= SEGMENTS; ++i) {
+                addVertexPair(pair++, dx, dy, dz, ROPE_WIDTH, ROPE_WIDTH, offsetX, offsetZ, i, false);
+            }
+            for (int i = SEGMENTS; i >= 0; --i) {
+                addVertexPair(pair++, dx, dy, dz, ROPE_WIDTH, 0.0F, offsetX, offsetZ, i, true);
+            }
+        }
+
+        private void addVertexPair(int pair, float dx, float dy, float dz, float height, float thickness,
+                                   float offsetX, float offsetZ, int index, boolean reverse) {
+            float progress = (float) index / SEGMENTS;
+            int block = (int) lerp(progress, entityBlock, holderBlock);
+            int sky = (int) lerp(progress, entitySky, holderSky);
+            // LightTexture#pack
+            lights[pair] = block << 4 | sky << 20;
+            shades[pair] = index % 2 == (reverse ? 1 : 0) ? 0.7F : 1.0F;
+
+            float x = dx * progress;
+            float y = dy > 0.0F ? dy * progress * progress : dy - dy * (1.0F - progress) * (1.0F - progress);
+            float z = dz * progress;
+            int i = pair * 6;
+            positions[i] = x - offsetX;
+            positions[i + 1] = y + thickness;
+            positions[i + 2] = z + offsetZ;
+            positions[i + 3] = x + offsetX;
+            positions[i + 4] = y + height - thickness;
+            positions[i + 5] = z - offsetZ;
+        }
+
+        private static double distanceSqr(double x, double y, double z) {
+            return x * x + y * y + z * z;
+        }
+
+        private static float lerp(float delta, float start, float end) {
+            return start + delta * (end - start);
+        }
+
+        // Mth#invSqrt
+        private static float invSqrt(float x) {
+            return 1.0F / (float) Math.sqrt(x);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package committee.nova.mods.moreleads.common;
+
+import committee.nova.mods.moreleads.mixin.EntityInvoker;
+import committee.nova.mods.moreleads.platform.Services;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.ambient.AmbientCreature;
+import net.minecraft.world.entity.animal.Dolphin;
+import net.minecraft.world.entity.animal.Panda;
+import net.minecraft.world.entity.animal.Turtle;
+import net.minecraft.world.entity.animal.WaterAnimal;
+import net.minecraft.world.entity.monster.Enemy;
+import net.minecraft.world.entity.monster.Zoglin;
+import net.minecraft.world.entity.monster.hoglin.Hoglin;
+import net.minecraft.world.entity.npc.AbstractVillager;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.pathfinder.BlockPathTypes;
+import net.minecraft.world.level.pathfinder.WalkNodeEvaluator;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 16:10
+ * @Description: Takes the mobs leashed to a player along when the player goes through a portal, instead of letting
+ * every leash break and be tied again by hand on the other side.
+ */
+public class LeashGroupTransfer {
+    /**
+     * Vanilla breaks a leash past this distance, so nothing further away can still be tied to the holder.
+     */
+    public static final double LEASH_RANGE = 10.0D;
+    /**
+     * How far from the arrival point a member that does not fit at its old offset is placed at most.
+     */
+    public static final int SPOT_SEARCH_RADIUS = 4;
+
+    /**
+     * Collects the mobs leashed to the holder that may follow them, with their offset from the holder.
+     *
+     * @param holder The player about to change dimension.
+     * @return The group, empty if nothing should follow.
+     */
+    public static List<Member> collect(ServerPlayer holder) {
+        if (!ModConfig.PORTAL_GROUP_TRANSFER_ENABLED) {
+            return List.of();
+        }
+        Vec3 origin = holder.position();
+        List<Member> group = new ArrayList<>();
+        for (Mob mob : holder.serverLevel().getEntitiesOfClass(Mob.class, holder.getBoundingBox().inflate(LEASH_RANGE),
+                mob -> mob.getLeashHolder() == holder)) {
+            if (mob.isAlive() && mob.canChangeDimensions() && !mob.isVehicle() && isCategoryEnabled(mob)) {
+                group.add(new Member(mob, mob.position().subtract(origin)));
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Moves a collected group next to the holder in the holder's new level. The target chunks are ticketed once for
+     * the whole group and each copy is placed before it is tied, so the leash is logged and located where the copy
+     * really is. Members a travel listener cancels stay behind.
+     *
+     * @param holder The player, already in the destination level.
+     * @param group  The group collected before the player left.
+     */
+    public static void transfer(ServerPlayer holder, List<Member> group) {
+        ServerLevel destination = holder.serverLevel();
+        Vec3 arrival = holder.position();
+        ChunkPos center = holder.chunkPosition();
+
+        int radius = 1;
+        for (Member member : group) {
+            radius = Math.max(radius, chunkDistance(center, arrival.add(member.offset())));
+        }
+        destination.getChunkSource().addRegionTicket(TicketType.POST_TELEPORT, center, radius, holder.getId());
+
+        for (Member member : group) {
+            Mob mob = member.mob();
+            // Forge fires this from Entity#changeDimension, which the members never go through
+            if (!Services.PLATFORM.onTravelToDimension(mob, destination.dimension())) {
+                continue;
+            }
+            Vec3 target = findSpot(destination, mob, arrival, member.offset());
+            ServerLevel from = (ServerLevel) mob.level();
+
+            mob.unRide();
+            Entity created = mob.getType().create(destination);
+            if (!(created instanceof Mob copy)) {
+                continue;
+            }
+            // Entity#restoreFrom without the old leash, the copy would otherwise restore it on its first tick
+            CompoundTag data = mob.saveWithoutId(new CompoundTag());
+            data.remove("Dimension");
+            data.remove("Leash");
+            copy.load(data);
+            mob.dropLeash(false, false);
+            copy.moveTo(target.x, target.y, target.z, mob.getYRot(), mob.getXRot());
+            copy.setDeltaMovement(mob.getDeltaMovement());
+            // The copy may land in or next to the portal, keep it from being sent straight back
+            copy.setPortalCooldown();
+            copy.setLeashedTo(holder, false);
+            destination.addDuringTeleport(copy);
+            ((EntityInvoker) mob).moreleads$removeAfterChangingDimensions();
+            from.resetEmptyTime();
+        }
+        destination.resetEmptyTime();
+    }
+
+    /**
+     * Finds where a member lands: its old offset from the holder if that is safe, else the first safe spot on rings
+     * around the arrival point, one block up or down allowed. If none is safe the member stands where the holder
+     * does, which the holder's own portal logic already found to be safe.
+     */
+    private static Vec3 findSpot(ServerLevel destination, Mob mob, Vec3 arrival, Vec3 offset) {
+        Vec3 target = arrival.add(offset);
+        if (isSafe(destination, mob, target)) {
+            return target;
+        }
+        for (int ring = 1; ring <= SPOT_SEARCH_RADIUS; ring++) {
+            for (int step = 0; step < 8; step++) {
+                double angle = step * Math.PI / 4.0D;
+                for (int dy : new int[]{0, 1, -1}) {
+                    Vec3 spot = new Vec3(arrival.x + Math.cos(angle) * ring, Math.floor(arrival.y) + dy, arrival.z + Math.sin(angle) * ring);
+                    if (isSafe(destination, mob, spot)) {
+                        return spot;
+                    }
+                }
+            }
+        }
+        return arrival;
+    }
+
+    /**
+     * A spot is safe if the mob fits, is outside any portal, stands on a sturdy block and the block at its feet has
+     * no path malus for it, which keeps land mobs out of lava, fire and water while a strider may still land in lava.
+     */
+    private static boolean isSafe(ServerLevel destination, Mob mob, Vec3 pos) {
+        AABB box = mob.getDimensions(mob.getPose()).makeBoundingBox(pos);
+        if (!destination.noCollision(mob, box) || destination.getBlockStates(box).anyMatch(state -> state.is(BlockTags.PORTALS))) {
+            return false;
+        }
+        BlockPos feet = BlockPos.containing(pos);
+        BlockPos below = feet.below();
+        if (!destination.getBlockState(below).isFaceSturdy(destination, below, Direction.UP)) {
+            return false;
+        }
+        BlockPathTypes type = WalkNodeEvaluator.getBlockPathTypeStatic(destination, feet.mutable());
+        return mob.getPathfindingMalus(type) == 0.0F;
+    }
+
+    /**
+     * Checks the config toggle of the category this mod made the mob leashable under. Mobs that vanilla leashes
+     * anyway always follow, including dolphins, hoglins and zoglins, which sit inside those categories.
+     * Vanilla canBeLeashed cannot tell us this, it returns false for a mob that is already leashed.
+     */
+    public static boolean isCategoryEnabled(Mob mob) {
+        if (mob instanceof Dolphin || mob instanceof Hoglin || mob instanceof Zoglin) {
+            return true;
+        }
+        if (mob instanceof AbstractVillager) {
+            return ModConfig.VILLAGERS_ENABLED;
+        }
+        if (mob instanceof WaterAnimal) {
+            return ModConfig.WATER_CREATURES_ENABLED;
+        }
+        if (mob instanceof Turtle) {
+            return ModConfig.TURTLES_ENABLED;
+        }
+        if (mob instanceof AmbientCreature) {
+            return ModConfig.AMBIENTS_ENABLED;
+        }
+        if (mob instanceof Panda) {
+            return ModConfig.PANDAS_ENABLED;
+        }
+        if (mob instanceof Enemy) {
+            return ModConfig.HOSTILES_ENABLED;
+        }
+        return true;
+    }
+
+    private static int chunkDistance(ChunkPos center, Vec3 target) {
+        int x = Math.abs(((int) Math.floor(target.x) >> 4) - center.x);
+        int z = Math.abs(((int) Math.floor(target.z) >> 4) - center.z);
+        return Math.max(x, z) + 1;
+    }
+
+    public record Member(Mob mob, Vec3 offset) {
+    }
+}
@@ -29,4 +29,16 @@ public class ModConfig {
     @ConfigFile.Comment("Enable leading pandas")
     public static boolean PANDAS_ENABLED = true;
 
+    @ConfigFile.Comment("Take leashed mobs along when their holder goes through a portal")
+    public static boolean PORTAL_GROUP_TRANSFER_ENABLED = true;
+
+    @ConfigFile.Comment("Memory cap in KB for cached leash rope geometry, 0 to disable")
+    public static int LEASH_GEOMETRY_CACHE_KB = 1024;
+
+    @ConfigFile.Comment("How many leash events to keep for /moreleads trace dump, 0 to disable recording")
+    public static int LEASH_TRACE_EVENTS = 0;
+
+    @ConfigFile.Comment("Tick time in ms that dumps the leash trace automatically, 0 to only dump on command")
+    public static int LEASH_TRACE_SPIKE_MS = 0;
+
 }
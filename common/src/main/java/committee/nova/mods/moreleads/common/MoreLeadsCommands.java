@@ -0,0 +1,43 @@
+package committee.nova.mods.moreleads.common;
+
+import com.mojang.brigadier.CommandDispatcher;
+import committee.nova.mods.moreleads.trace.LeashEventRecorder;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 18:05
+ * @Description:
+ */
+public class MoreLeadsCommands {
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal(Constants.MOD_ID)
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("trace")
+                        .then(Commands.literal("dump").executes(context -> dumpTrace(context.getSource())))));
+    }
+
+    private static int dumpTrace(CommandSourceStack source) {
+        LeashEventRecorder recorder = LeashEventRecorder.get();
+        if (recorder == null) {
+            source.sendFailure(Component.literal("Leash trace recording is disabled, set LEASH_TRACE_EVENTS in moreleads.cfg"));
+            return 0;
+        }
+        int events = recorder.size();
+        recorder.dump().whenComplete((file, error) -> source.getServer().execute(() -> {
+            if (error != null) {
+                Constants.LOG.error("Failed to dump leash trace", error);
+                source.sendFailure(Component.literal("Failed to dump leash trace: " + error.getMessage()));
+            } else {
+                long dropped = recorder.getDropped();
+                String note = dropped > 0 ? " (" + dropped + " events from other threads were not recorded)" : "";
+                source.sendSuccess(() -> Component.literal("Dumped " + events + " leash events to " + file + note), true);
+            }
+        }));
+        return events;
+    }
+}
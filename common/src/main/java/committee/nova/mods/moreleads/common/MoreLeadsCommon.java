@@ -1,5 +1,10 @@
 package committee.nova.mods.moreleads.common;
 
+import committee.nova.mods.moreleads.coordination.LeashCoordinator;
+import committee.nova.mods.moreleads.coordination.ServerThreadScheduler;
+import committee.nova.mods.moreleads.platform.Services;
+import committee.nova.mods.moreleads.trace.LeashEventRecorder;
+
 // This class is part of the common project meaning it is shared between all supported loaders. Code written here can only
 // import and access the vanilla codebase, libraries used by vanilla, and optionally third party libraries that provide
 // common compatible binaries. This means common code can not directly use loader specific concepts such as Forge events
@@ -11,5 +16,8 @@ public class MoreLeadsCommon {
     // code that gets invoked by the entry point of the loader specific projects.
     public static void init() {
         ConfigFile.sync(ModConfig.class);
+        LeashCoordinator.get().setScheduler(new ServerThreadScheduler());
+        LeashEventRecorder.init(ModConfig.LEASH_TRACE_EVENTS,
+                Services.PLATFORM.getConfigPath().resolveSibling(Constants.MOD_ID + "-traces"), ModConfig.LEASH_TRACE_SPIKE_MS);
     }
 }
\ No newline at end of file
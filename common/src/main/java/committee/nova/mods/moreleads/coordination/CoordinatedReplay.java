@@ -0,0 +1,124 @@
+package committee.nova.mods.moreleads.coordination;
+
+import committee.nova.mods.moreleads.trace.LeashEventType;
+import committee.nova.mods.moreleads.trace.LeashTraceReplay;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/20 14:40
+ * @Description: Feeds a leash trace through a {@link LeashCoordinator} of its own as a region-threaded server would,
+ * a repeatable benchmark of the coordination path. Attach and detach start in the holder's region (the player using
+ * or taking the lead), restore and break in the mob's own tick. An op whose start is not the mob's region is posted
+ * to the mob's mailbox, and every mailbox is drained at the end of a tick.
+ * <p>
+ * Usage: {@code java -cp <common jar> committee.nova.mods.moreleads.coordination.CoordinatedReplay <trace> [iterations] [region shift]}
+ */
+public class CoordinatedReplay implements LeashTraceReplay.Listener, RegionScheduler {
+    private final LeashTraceReplay.LeashGraph graph = new LeashTraceReplay.LeashGraph();
+    private final LeashCoordinator coordinator = new LeashCoordinator();
+    private final Object level = new Object();
+    private final int regionShift;
+    private boolean ownsAll;
+    private int ownerX;
+    private int ownerZ;
+    private long direct;
+    private long handedOver;
+
+    public CoordinatedReplay(int regionShift) {
+        this.regionShift = regionShift;
+        this.coordinator.setScheduler(this);
+    }
+
+    @Override
+    public int regionShift() {
+        return regionShift;
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(Object level, int regionX, int regionZ) {
+        return ownsAll || (regionX == ownerX && regionZ == ownerZ);
+    }
+
+    @Override
+    public void onEvent(long tick, LeashEventType type, int entity, int holder, int value,
+                        int mobChunkX, int mobChunkZ, int holderChunkX, int holderChunkZ) {
+        Runnable apply = () -> graph.onEvent(tick, type, entity, holder, value, mobChunkX, mobChunkZ, holderChunkX, holderChunkZ);
+        switch (type) {
+            case ATTACH -> submit(LeashOp.ATTACH, mobChunkX, mobChunkZ, holderChunkX, holderChunkZ, apply);
+            case DETACH -> submit(LeashOp.DROP, mobChunkX, mobChunkZ, holderChunkX, holderChunkZ, apply);
+            case RESTORE -> submit(LeashOp.RESTORE, mobChunkX, mobChunkZ, mobChunkX, mobChunkZ, apply);
+            case BREAK -> submit(LeashOp.DROP, mobChunkX, mobChunkZ, mobChunkX, mobChunkZ, apply);
+            case TELEPORT_DENIED -> apply.run();
+            case TICK -> {
+                drainAll();
+                apply.run();
+            }
+        }
+    }
+
+    private void submit(LeashOp op, int mobChunkX, int mobChunkZ, int fromChunkX, int fromChunkZ, Runnable action) {
+        ownerX = fromChunkX >> regionShift;
+        ownerZ = fromChunkZ >> regionShift;
+        if (coordinator.isOwned(level, mobChunkX, mobChunkZ)) {
+            direct++;
+            action.run();
+        } else {
+            handedOver++;
+            coordinator.post(level, mobChunkX, mobChunkZ, op, action);
+        }
+    }
+
+    private void drainAll() {
+        ownsAll = true;
+        coordinator.drainOwned();
+        ownsAll = false;
+    }
+
+    public LeashTraceReplay.LeashGraph getGraph() {
+        return graph;
+    }
+
+    public long getDirect() {
+        return direct;
+    }
+
+    public long getHandedOver() {
+        return handedOver;
+    }
+
+    /**
+     * Replays the whole trace and runs whatever is still posted at its end.
+     */
+    public CoordinatedReplay run(LeashTraceReplay trace) {
+        trace.replay(this);
+        drainAll();
+        return this;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CoordinatedReplay <trace> [iterations] [region shift]");
+            System.exit(1);
+        }
+        LeashTraceReplay trace = LeashTraceReplay.read(Paths.get(args[0]));
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int regionShift = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        CoordinatedReplay first = new CoordinatedReplay(regionShift).run(trace);
+        System.out.println(trace.size() + " events: " + first.getGraph());
+        System.out.println("leash ops: " + first.getDirect() + " direct, " + first.getHandedOver()
+                + " handed to another region (" + (1 << regionShift) + "x" + (1 << regionShift) + " chunk regions)");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            new CoordinatedReplay(regionShift).run(trace);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%d iterations through LeashCoordinator in %.3f ms, %.1f ns/event%n", iterations, nanos / 1.0E6,
+                (double) nanos / Math.max(1L, (long) iterations * trace.size()));
+    }
+}
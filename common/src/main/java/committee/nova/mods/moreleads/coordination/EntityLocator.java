@@ -0,0 +1,29 @@
+package committee.nova.mods.moreleads.coordination;
+
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.entity.Entity;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/20 10:15
+ * @Description: Locates entities for the coordinator by their level and current chunk.
+ */
+public class EntityLocator implements LeashCoordinator.Locator<Entity> {
+    public static final EntityLocator INSTANCE = new EntityLocator();
+
+    @Override
+    public Object level(Entity target) {
+        return target.level();
+    }
+
+    @Override
+    public int chunkX(Entity target) {
+        return SectionPos.blockToSectionCoord(target.getBlockX());
+    }
+
+    @Override
+    public int chunkZ(Entity target) {
+        return SectionPos.blockToSectionCoord(target.getBlockZ());
+    }
+}
@@ -0,0 +1,22 @@
+package committee.nova.mods.moreleads.coordination;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/21 09:40
+ * @Description: What a leashed mob may know about a holder ticked by another thread. The holder's owner takes it and
+ * hands it over whole, so the mob never reads the holder while it moves.
+ */
+public record HolderSnapshot(int holderId, Object level, double x, double y, double z, boolean alive) {
+
+    /**
+     * Implemented on every mob.
+     */
+    public interface Source {
+        /**
+         * Gets the current holder as the mob's own thread may read it: taken right away if this thread owns the
+         * holder too, else the last snapshot the holder's owner took, or null if there is none for this holder yet.
+         */
+        HolderSnapshot moreleads$viewHolder();
+    }
+}
@@ -0,0 +1,218 @@
+package committee.nova.mods.moreleads.coordination;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 20:30
+ * @Description: Routes leash operations to the region that owns the leashed mob. A thread owning the region runs
+ * them right away, any other thread posts them to that region's mailbox, which its owner drains on its own tick.
+ * Without a scheduler everything runs directly, as in vanilla.
+ * <p>
+ * The mod uses the shared {@link #get()} instance, tools and tests make their own so they never touch its mailboxes.
+ */
+public class LeashCoordinator {
+    private static final LeashCoordinator SERVER = new LeashCoordinator();
+
+    private volatile RegionScheduler scheduler;
+
+    private final Map<RegionKey, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicLongArray posted = new AtomicLongArray(LeashOp.values().length);
+
+    /**
+     * Gets the coordinator of the running server.
+     */
+    public static LeashCoordinator get() {
+        return SERVER;
+    }
+
+    public void setScheduler(RegionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public RegionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Checks if a leash operation on a mob in the given chunk can run on the current thread.
+     */
+    public boolean isOwned(Object level, int chunkX, int chunkZ) {
+        RegionScheduler current = scheduler;
+        if (current == null) {
+            return true;
+        }
+        int shift = current.regionShift();
+        return current.isOwnedByCurrentThread(level, chunkX >> shift, chunkZ >> shift);
+    }
+
+    /**
+     * Checks if the current thread owns the region the target is in.
+     */
+    public <T> boolean isOwned(T target, Locator<T> locator) {
+        return isOwned(locator.level(target), locator.chunkX(target), locator.chunkZ(target));
+    }
+
+    /**
+     * Hands an operation to the region owning the given chunk, to run on its next drain.
+     */
+    public void post(Object level, int chunkX, int chunkZ, LeashOp op, Runnable action) {
+        RegionScheduler current = scheduler;
+        int shift = current == null ? 0 : current.regionShift();
+        RegionKey region = new RegionKey(level, chunkX >> shift, chunkZ >> shift);
+        // A closed mailbox is about to leave the map, its owner removes it right after closing
+        while (!mailboxes.computeIfAbsent(region, key -> new Mailbox()).offer(action)) {
+            Thread.onSpinWait();
+        }
+        posted.incrementAndGet(op.ordinal());
+    }
+
+    /**
+     * Posts an operation on the target to the region it is in, unless the current thread owns that region. A posted
+     * operation looks the target up again when it is drained and follows it on if it changed region meanwhile.
+     *
+     * @return True if the operation was posted and the caller must not run it now.
+     */
+    public <T> boolean postIfForeign(T target, Locator<T> locator, LeashOp op, Runnable action) {
+        Object level = locator.level(target);
+        int chunkX = locator.chunkX(target);
+        int chunkZ = locator.chunkZ(target);
+        if (isOwned(level, chunkX, chunkZ)) {
+            return false;
+        }
+        post(level, chunkX, chunkZ, op, () -> {
+            if (!postIfForeign(target, locator, op, action)) {
+                action.run();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Runs the operations posted to one region, only from the thread owning it. The region's mailbox is dropped once
+     * it is empty, so regions that saw a single op do not keep one forever.
+     *
+     * @return How many operations ran.
+     */
+    public int drain(Object level, int regionX, int regionZ) {
+        RegionKey region = new RegionKey(level, regionX, regionZ);
+        Mailbox mailbox = mailboxes.get(region);
+        return mailbox == null ? 0 : drain(region, mailbox);
+    }
+
+    /**
+     * Runs the operations of every region the current thread owns.
+     *
+     * @return How many operations ran.
+     */
+    public int drainOwned() {
+        if (mailboxes.isEmpty()) {
+            return 0;
+        }
+        RegionScheduler current = scheduler;
+        int ran = 0;
+        for (Map.Entry<RegionKey, Mailbox> entry : mailboxes.entrySet()) {
+            RegionKey key = entry.getKey();
+            if (current == null || current.isOwnedByCurrentThread(key.level(), key.x(), key.z())) {
+                ran += drain(key, entry.getValue());
+            }
+        }
+        return ran;
+    }
+
+    private int drain(RegionKey region, Mailbox mailbox) {
+        int ran = mailbox.run();
+        if (mailbox.close()) {
+            mailboxes.remove(region, mailbox);
+            // Offers that finished before the close may not have been linked when the first pass ended
+            ran += mailbox.run();
+        }
+        return ran;
+    }
+
+    /**
+     * Gets how many regions currently have a mailbox.
+     */
+    public int getMailboxCount() {
+        return mailboxes.size();
+    }
+
+    /**
+     * Forgets every mailbox, for when the server stops and its levels go away.
+     */
+    public void clear() {
+        mailboxes.clear();
+    }
+
+    /**
+     * Gets how many operations of a kind had to be handed to another region so far.
+     */
+    public long getPosted(LeashOp op) {
+        return posted.get(op.ordinal());
+    }
+
+    /**
+     * Tells where a leash target currently is.
+     */
+    public interface Locator<T> {
+        Object level(T target);
+
+        int chunkX(T target);
+
+        int chunkZ(T target);
+    }
+
+    /**
+     * A region's queue plus a count of producers inside {@link #offer}. The owner may only retire it while that count
+     * is zero, after which every offer fails and goes to a fresh mailbox, so nothing is ever left in a removed one.
+     */
+    private static final class Mailbox {
+        private static final int CLOSED = -1;
+
+        private final MpscQueue<Runnable> queue = new MpscQueue<>();
+        private final AtomicInteger offering = new AtomicInteger();
+
+        boolean offer(Runnable action) {
+            int current;
+            do {
+                current = offering.get();
+                if (current == CLOSED) {
+                    return false;
+                }
+            } while (!offering.compareAndSet(current, current + 1));
+            queue.offer(action);
+            offering.decrementAndGet();
+            return true;
+        }
+
+        int run() {
+            int ran = 0;
+            Runnable action;
+            while ((action = queue.poll()) != null) {
+                action.run();
+                ran++;
+            }
+            return ran;
+        }
+
+        boolean close() {
+            return queue.isEmpty() && offering.compareAndSet(0, CLOSED);
+        }
+    }
+
+    record RegionKey(Object level, int x, int z) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RegionKey key && key.level == level && key.x == x && key.z == z;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(level) * 31 + x) * 31 + z;
+        }
+    }
+}
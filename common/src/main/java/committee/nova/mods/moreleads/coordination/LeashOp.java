@@ -0,0 +1,27 @@
+package committee.nova.mods.moreleads.coordination;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 20:30
+ * @Description: Leash operations that may be handed over to the region owning the leashed mob.
+ */
+public enum LeashOp {
+    /**
+     * Tying a leash, usually by a player holding a lead. A posted attach only applies if the mob is still there and
+     * still has the holder the caller saw, a player tying a free mob also has to pass canBeLeashed again. Otherwise it
+     * is dropped, and if the caller tied a free mob the lead it used drops at the mob, as from a snapped leash.
+     */
+    ATTACH,
+    /**
+     * Tying a leash read from a save. A saved fence knot in another region is found or made on that region's owner
+     * first. A saved holder uuid is looked up in the level's entity index, which any entity tick may read, and the
+     * lookup only changes the mob itself; the holder it finds is then read through {@link #PULL} snapshots only.
+     */
+    RESTORE,
+    DROP,
+    /**
+     * Taking a {@link HolderSnapshot} of a holder in another region, for the leashed mob's alive check and pull.
+     */
+    PULL
+}
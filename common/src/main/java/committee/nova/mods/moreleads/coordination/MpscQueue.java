@@ -0,0 +1,60 @@
+package committee.nova.mods.moreleads.coordination;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 20:30
+ * @Description: Unbounded lock-free queue for many producers and a single consumer. Producers only swap the tail,
+ * the consumer owns the head, so neither side ever blocks the other.
+ */
+public class MpscQueue<T> {
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;
+
+    public MpscQueue() {
+        Node<T> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Adds a value, safe from any thread.
+     */
+    public void offer(T value) {
+        Node<T> node = new Node<>(value);
+        Node<T> previous = tail.getAndSet(node);
+        // Between the swap and this write the consumer sees the queue as ending at previous
+        previous.next = node;
+    }
+
+    /**
+     * Takes the oldest value, only from the consuming thread.
+     *
+     * @return The value, or null if nothing is linked yet.
+     */
+    public T poll() {
+        Node<T> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    private static final class Node<T> {
+        private T value;
+        private volatile Node<T> next;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+}
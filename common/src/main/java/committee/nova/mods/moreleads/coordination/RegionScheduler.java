@@ -0,0 +1,35 @@
+package committee.nova.mods.moreleads.coordination;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 20:30
+ * @Description: Tells the coordinator how the server splits a level into regions and which thread ticks them.
+ * Region-threaded servers plug in their own, the default treats the server thread as owner of everything.
+ * <p>
+ * The coordinator never runs posted ops by itself. Whatever ticks a region has to call
+ * {@link LeashCoordinator#drain(Object, int, int)} for it on the owning thread once per region tick, before the
+ * region's entities tick, or {@link LeashCoordinator#drainOwned()} to cover every region the thread owns, as the
+ * server tick does for the default scheduler. A drain also runs what is posted to the region while it runs, sends
+ * ops whose mob left the region on to the mob's new region and drops the region's mailbox once it is empty. Ops
+ * posted to a region that is never drained, such as one that just unloaded, wait until it ticks again.
+ */
+public interface RegionScheduler {
+
+    /**
+     * Gets the size of a region as a shift on chunk coordinates.
+     *
+     * @return 0 for one chunk per region, 3 for 8x8 chunks and so on.
+     */
+    int regionShift();
+
+    /**
+     * Checks if the current thread may touch entities in the given region right now.
+     *
+     * @param level   The level the region belongs to.
+     * @param regionX The region x, chunk x shifted by {@link #regionShift()}.
+     * @param regionZ The region z, chunk z shifted by {@link #regionShift()}.
+     * @return True if the current thread owns the region.
+     */
+    boolean isOwnedByCurrentThread(Object level, int regionX, int regionZ);
+}
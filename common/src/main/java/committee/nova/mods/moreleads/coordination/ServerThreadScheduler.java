@@ -0,0 +1,22 @@
+package committee.nova.mods.moreleads.coordination;
+
+import net.minecraft.server.level.ServerLevel;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 20:30
+ * @Description: The vanilla layout, every region is ticked by the server thread.
+ */
+public class ServerThreadScheduler implements RegionScheduler {
+
+    @Override
+    public int regionShift() {
+        return 31;
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(Object level, int regionX, int regionZ) {
+        return ((ServerLevel) level).getServer().isSameThread();
+    }
+}
@@ -0,0 +1,17 @@
+package committee.nova.mods.moreleads.mixin;
+
+import net.minecraft.world.entity.Entity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 16:10
+ * @Description:
+ */
+@Mixin(Entity.class)
+public interface EntityInvoker {
+    @Invoker("removeAfterChangingDimensions")
+    void moreleads$removeAfterChangingDimensions();
+}
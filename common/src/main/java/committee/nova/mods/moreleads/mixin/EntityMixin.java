@@ -1,24 +1,43 @@
 package committee.nova.mods.moreleads.mixin;
 
 import committee.nova.mods.moreleads.common.ModConfig;
+import committee.nova.mods.moreleads.coordination.EntityLocator;
+import committee.nova.mods.moreleads.coordination.HolderSnapshot;
+import committee.nova.mods.moreleads.coordination.LeashCoordinator;
+import committee.nova.mods.moreleads.coordination.LeashOp;
+import committee.nova.mods.moreleads.trace.LeashEventRecorder;
+import committee.nova.mods.moreleads.trace.LeashEventType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
 import net.minecraft.world.entity.*;
+import net.minecraft.world.entity.ai.goal.Goal;
 import net.minecraft.world.entity.ambient.AmbientCreature;
 import net.minecraft.world.entity.animal.Animal;
 import net.minecraft.world.entity.animal.Panda;
 import net.minecraft.world.entity.animal.Turtle;
 import net.minecraft.world.entity.animal.WaterAnimal;
+import net.minecraft.world.entity.decoration.LeashFenceKnotEntity;
 import net.minecraft.world.entity.monster.EnderMan;
 import net.minecraft.world.entity.monster.Monster;
 import net.minecraft.world.entity.npc.AbstractVillager;
 import net.minecraft.world.entity.npc.Npc;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.Items;
 import net.minecraft.world.item.trading.Merchant;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.Vec3;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import javax.annotation.Nullable;
+
 /**
  * @Project: MoreLeads
  * @Author: cnlimiter
@@ -26,18 +45,236 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
  * @Description:
  */
 @Mixin(Mob.class)
-abstract class MobEntityMixin extends LivingEntity {
+abstract class MobEntityMixin extends LivingEntity implements HolderSnapshot.Source {
     protected MobEntityMixin(EntityType<? extends LivingEntity> entityType, Level world) {
         super(entityType, world);
     }
 
+    @Shadow
+    @Nullable
+    private CompoundTag leashInfoTag;
+
     @Shadow
     public abstract boolean isLeashed();
 
+    @Shadow
+    public abstract void dropLeash(boolean broadcast, boolean dropLead);
+
+    @Shadow
+    @Nullable
+    public abstract Entity getLeashHolder();
+
+    // Written by the holder's owner on a PULL, read by this mob's own tick
+    @Unique
+    private volatile HolderSnapshot moreleads$holderSnapshot;
+
+    @Unique
+    private boolean moreleads$knotPosted;
+
     @Inject(method = "canBeLeashed", at = @At("RETURN"), cancellable = true)
     private void onCanBeLeashedBy(CallbackInfoReturnable<Boolean> cir) {
         cir.setReturnValue((cir.getReturnValue() || (!this.isLeashed()) && ModConfig.HOSTILES_ENABLED));
     }
+
+    @Override
+    public HolderSnapshot moreleads$viewHolder() {
+        Entity holder = this.getLeashHolder();
+        return holder == null ? null : this.moreleads$view(holder);
+    }
+
+    @Unique
+    @Nullable
+    private HolderSnapshot moreleads$view(Entity holder) {
+        if (this.level().isClientSide || LeashCoordinator.get().isOwned(holder, EntityLocator.INSTANCE)) {
+            return moreleads$snapshot(holder);
+        }
+        HolderSnapshot snapshot = this.moreleads$holderSnapshot;
+        return snapshot != null && snapshot.holderId() == holder.getId() ? snapshot : null;
+    }
+
+    @Unique
+    private static HolderSnapshot moreleads$snapshot(Entity holder) {
+        return new HolderSnapshot(holder.getId(), holder.level(), holder.getX(), holder.getY(), holder.getZ(), holder.isAlive());
+    }
+
+    // Leash ops coming from a thread that does not own this mob's region run later on the owner instead
+    @Unique
+    private boolean moreleads$postIfForeign(LeashOp op, Runnable action) {
+        return !this.level().isClientSide && LeashCoordinator.get().postIfForeign((Entity) this, EntityLocator.INSTANCE, op, () -> {
+            if (!this.isRemoved()) {
+                action.run();
+            }
+        });
+    }
+
+    // Coordinate, then record on the owner for the trace recorder, leashInfoTag is only still set while a saved leash is being restored
+    @Inject(method = "setLeashedTo", at = @At("HEAD"), cancellable = true)
+    private void onSetLeashedTo(Entity holder, boolean broadcast, CallbackInfo ci) {
+        Mob self = (Mob) (Object) this;
+        boolean restore = this.leashInfoTag != null;
+        // The holder the caller saw when it decided to tie the mob
+        Entity expected = this.getLeashHolder();
+        if (!this.level().isClientSide && LeashCoordinator.get().postIfForeign((Entity) this, EntityLocator.INSTANCE,
+                restore ? LeashOp.RESTORE : LeashOp.ATTACH, () -> {
+                    if (restore ? !this.isRemoved() : this.moreleads$canStillAttach(expected, holder)) {
+                        self.setLeashedTo(holder, broadcast);
+                    } else if (!restore && expected == null) {
+                        // Tying a free mob used up a lead, give it back the way a snapped leash would
+                        this.spawnAtLocation(Items.LEAD);
+                    }
+                })) {
+            ci.cancel();
+            return;
+        }
+        if (LeashEventRecorder.isEnabled() && !this.level().isClientSide) {
+            LeashEventType type = restore ? LeashEventType.RESTORE : LeashEventType.ATTACH;
+            this.moreleads$record(type, holder, this.moreleads$view(holder));
+        }
+    }
+
+    // A posted attach only applies if the mob is still here with the holder the caller saw and, for a player tying a
+    // free mob, can still be leashed, so two regions tying the same mob on stale state cannot both win
+    @Unique
+    private boolean moreleads$canStillAttach(@Nullable Entity expected, Entity holder) {
+        if (this.isRemoved() || this.getLeashHolder() != expected) {
+            return false;
+        }
+        return expected != null || !(holder instanceof Player player) || ((Mob) (Object) this).canBeLeashed(player);
+    }
+
+    // Same conditions vanilla drops a leash under in tickLeash, anything else was removed on purpose
+    @Inject(method = "dropLeash", at = @At("HEAD"), cancellable = true)
+    private void onDropLeash(boolean broadcast, boolean dropLead, CallbackInfo ci) {
+        Entity holder = this.getLeashHolder();
+        if (holder == null) {
+            return;
+        }
+        Mob self = (Mob) (Object) this;
+        if (this.moreleads$postIfForeign(LeashOp.DROP, () -> self.dropLeash(broadcast, dropLead))) {
+            ci.cancel();
+            return;
+        }
+        if (LeashEventRecorder.isEnabled() && !this.level().isClientSide) {
+            HolderSnapshot view = this.moreleads$view(holder);
+            boolean snapped = dropLead && (!this.isAlive() || view != null && (!view.alive() || view.level() != this.level()
+                    || this.distanceToSqr(view.x(), view.y(), view.z()) > 100.0D));
+            this.moreleads$record(snapped ? LeashEventType.BREAK : LeashEventType.DETACH, holder, view);
+        }
+    }
+
+    // Without a snapshot of a holder in another region its chunk is unknown, the mob's own is recorded instead
+    @Unique
+    private void moreleads$record(LeashEventType type, Entity holder, @Nullable HolderSnapshot view) {
+        int chunkX = SectionPos.blockToSectionCoord(this.getBlockX());
+        int chunkZ = SectionPos.blockToSectionCoord(this.getBlockZ());
+        LeashEventRecorder.record(type, this.getId(), holder.getId(), 0, chunkX, chunkZ,
+                view == null ? chunkX : SectionPos.posToSectionCoord(view.x()),
+                view == null ? chunkZ : SectionPos.posToSectionCoord(view.z()));
+    }
+
+    // A holder in a region another thread ticks is only read through the snapshot its owner takes each tick
+    @Inject(method = "tickLeash", at = @At("HEAD"), cancellable = true)
+    private void onTickLeash(CallbackInfo ci) {
+        Entity holder = this.getLeashHolder();
+        if (holder == null) {
+            return;
+        }
+        LeashEventRecorder.countLeash();
+        if (this.level().isClientSide || !LeashCoordinator.get().postIfForeign(holder, EntityLocator.INSTANCE, LeashOp.PULL,
+                () -> this.moreleads$holderSnapshot = moreleads$snapshot(holder))) {
+            return;
+        }
+        ci.cancel();
+        HolderSnapshot view = this.moreleads$view(holder);
+        if (!this.isAlive() || view != null && !view.alive()) {
+            this.dropLeash(true, true);
+        }
+    }
+
+    // A saved leash on a fence knot in another region, the knot is found or made on that region's owner
+    @Inject(method = "restoreLeashFromSave", at = @At("HEAD"), cancellable = true)
+    private void onRestoreLeashFromSave(CallbackInfo ci) {
+        CompoundTag tag = this.leashInfoTag;
+        if (tag == null || this.level().isClientSide || tag.hasUUID("UUID")
+                || !tag.contains("X", 99) || !tag.contains("Y", 99) || !tag.contains("Z", 99)) {
+            return;
+        }
+        if (this.moreleads$knotPosted) {
+            ci.cancel();
+            return;
+        }
+        BlockPos pos = NbtUtils.readBlockPos(tag);
+        Level level = this.level();
+        int chunkX = SectionPos.blockToSectionCoord(pos.getX());
+        int chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+        if (LeashCoordinator.get().isOwned(level, chunkX, chunkZ)) {
+            return;
+        }
+        Mob self = (Mob) (Object) this;
+        this.moreleads$knotPosted = true;
+        LeashCoordinator.get().post(level, chunkX, chunkZ, LeashOp.RESTORE,
+                () -> self.setLeashedTo(LeashFenceKnotEntity.getOrCreateKnot(level, pos), true));
+        ci.cancel();
+    }
+}
+
+// Vanilla's leash pull with the holder's snapshot in place of a holder another thread ticks
+@Mixin(PathfinderMob.class)
+abstract class PathfinderMobMixin extends Mob {
+    protected PathfinderMobMixin(EntityType<? extends PathfinderMob> entityType, Level world) {
+        super(entityType, world);
+    }
+
+    @Shadow
+    public abstract void restrictTo(BlockPos pos, int distance);
+
+    @Shadow
+    protected abstract void onLeashDistance(float distance);
+
+    @Shadow
+    protected abstract boolean shouldStayCloseToLeashHolder();
+
+    @Shadow
+    protected abstract double followLeashSpeed();
+
+    @Inject(method = "tickLeash", at = @At("HEAD"), cancellable = true)
+    private void onTickLeash(CallbackInfo ci) {
+        Entity holder = this.getLeashHolder();
+        if (holder == null || this.level().isClientSide || LeashCoordinator.get().isOwned(holder, EntityLocator.INSTANCE)) {
+            return;
+        }
+        ci.cancel();
+        // Mob#tickLeash, which asks the holder's owner for the next snapshot
+        super.tickLeash();
+        HolderSnapshot view = ((HolderSnapshot.Source) this).moreleads$viewHolder();
+        if (view == null || view.level() != this.level()) {
+            return;
+        }
+        this.restrictTo(BlockPos.containing(view.x(), view.y(), view.z()), 5);
+        float distance = (float) Math.sqrt(this.distanceToSqr(view.x(), view.y(), view.z()));
+        if ((Object) this instanceof TamableAnimal tamable && tamable.isInSittingPose()) {
+            if (distance > 10.0F) {
+                this.dropLeash(true, true);
+            }
+            return;
+        }
+        this.onLeashDistance(distance);
+        if (distance > 10.0F) {
+            this.dropLeash(true, true);
+            this.goalSelector.disableControlFlag(Goal.Flag.MOVE);
+        } else if (distance > 6.0F) {
+            double dx = (view.x() - this.getX()) / distance;
+            double dy = (view.y() - this.getY()) / distance;
+            double dz = (view.z() - this.getZ()) / distance;
+            this.setDeltaMovement(this.getDeltaMovement().add(Math.copySign(dx * dx * 0.4D, dx), Math.copySign(dy * dy * 0.4D, dy), Math.copySign(dz * dz * 0.4D, dz)));
+            this.checkSlowFallDistance();
+        } else if (this.shouldStayCloseToLeashHolder()) {
+            this.goalSelector.enableControlFlag(Goal.Flag.MOVE);
+            Vec3 pull = new Vec3(view.x() - this.getX(), view.y() - this.getY(), view.z() - this.getZ())
+                    .normalize().scale(Math.max(distance - 2.0F, 0.0F));
+            this.getNavigation().moveTo(this.getX() + pull.x, this.getY() + pull.y, this.getZ() + pull.z, this.followLeashSpeed());
+        }
+    }
 }
 
 
@@ -118,6 +355,8 @@ abstract class EndermanTeleportMixin extends Monster {
     private void teleportRandomly(CallbackInfoReturnable<Boolean> cir) {
         if (this.isLeashed()) {
             cir.setReturnValue(false);
+            LeashEventRecorder.record(LeashEventType.TELEPORT_DENIED, this.getId(), -1, 0,
+                    this.getBlockX() >> 4, this.getBlockZ() >> 4, this.getBlockX() >> 4, this.getBlockZ() >> 4);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package committee.nova.mods.moreleads.mixin;
+
+import net.minecraft.client.renderer.entity.EntityRenderDispatcher;
+import net.minecraft.client.renderer.entity.EntityRenderer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.Entity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 14:40
+ * @Description:
+ */
+@Mixin(EntityRenderer.class)
+public interface EntityRendererAccessor {
+    @Accessor("entityRenderDispatcher")
+    EntityRenderDispatcher moreleads$getEntityRenderDispatcher();
+
+    @Invoker("getBlockLightLevel")
+    int moreleads$getBlockLightLevel(Entity entity, BlockPos pos);
+}
@@ -0,0 +1,41 @@
+package committee.nova.mods.moreleads.mixin;
+
+import committee.nova.mods.moreleads.coordination.LeashCoordinator;
+import committee.nova.mods.moreleads.trace.LeashEventRecorder;
+import net.minecraft.server.MinecraftServer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 18:05
+ * @Description:
+ */
+// Frame every server tick for the leash trace recorder and run leash ops handed over from other threads
+@Mixin(MinecraftServer.class)
+abstract class MinecraftServerMixin {
+    @Shadow
+    public abstract int getTickCount();
+
+    @Inject(method = "tickServer", at = @At("HEAD"))
+    private void onTickServerHead(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        LeashEventRecorder.startTick(this.getTickCount());
+        LeashCoordinator.get().drainOwned();
+    }
+
+    @Inject(method = "tickServer", at = @At("TAIL"))
+    private void onTickServerTail(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        LeashEventRecorder.endTick();
+    }
+
+    @Inject(method = "stopServer", at = @At("TAIL"))
+    private void onStopServer(CallbackInfo ci) {
+        LeashCoordinator.get().clear();
+    }
+}
@@ -0,0 +1,83 @@
+package committee.nova.mods.moreleads.mixin;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import committee.nova.mods.moreleads.client.LeashGeometryCache;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.entity.MobRenderer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.phys.Vec3;
+import org.joml.Matrix4f;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 14:40
+ * @Description:
+ */
+// Reuse the rope geometry of leashes whose ends did not move since the last frame
+@Mixin(MobRenderer.class)
+abstract class MobRendererMixin {
+
+    @Inject(method = "renderLeash", at = @At("HEAD"), cancellable = true)
+    private void onRenderLeash(Mob entity, float partialTicks, PoseStack poseStack, MultiBufferSource buffer, Entity holder, CallbackInfo ci) {
+        LeashGeometryCache cache = LeashGeometryCache.getInstance();
+        if (cache == null) {
+            return;
+        }
+
+        poseStack.pushPose();
+        Vec3 holdPos = holder.getRopeHoldPosition(partialTicks);
+        double yaw = (double) (Mth.lerp(partialTicks, entity.yBodyRotO, entity.yBodyRot) * ((float) Math.PI / 180F)) + (Math.PI / 2D);
+        Vec3 leashOffset = entity.getLeashOffset(partialTicks);
+        double offsetX = Math.cos(yaw) * leashOffset.z + Math.sin(yaw) * leashOffset.x;
+        double offsetZ = Math.sin(yaw) * leashOffset.z - Math.cos(yaw) * leashOffset.x;
+        double attachX = Mth.lerp(partialTicks, entity.xo, entity.getX()) + offsetX;
+        double attachY = Mth.lerp(partialTicks, entity.yo, entity.getY()) + leashOffset.y;
+        double attachZ = Mth.lerp(partialTicks, entity.zo, entity.getZ()) + offsetZ;
+        poseStack.translate(offsetX, leashOffset.y, offsetZ);
+
+        // Light only changes rarely under a still rope, so sample it again only when an end changes block
+        LeashGeometryCache.LeashGeometry geometry = cache.get(entity.getId());
+        Vec3 entityEye = entity.getEyePosition(partialTicks);
+        Vec3 holderEye = holder.getEyePosition(partialTicks);
+        long entityPos = BlockPos.asLong(Mth.floor(entityEye.x), Mth.floor(entityEye.y), Mth.floor(entityEye.z));
+        long holderPos = BlockPos.asLong(Mth.floor(holderEye.x), Mth.floor(holderEye.y), Mth.floor(holderEye.z));
+        long time = entity.level().getGameTime();
+        if (geometry.needsLight(entityPos, holderPos, time)) {
+            BlockPos entityBlockPos = BlockPos.of(entityPos);
+            BlockPos holderBlockPos = BlockPos.of(holderPos);
+            EntityRendererAccessor renderer = (EntityRendererAccessor) this;
+            EntityRendererAccessor holderRenderer = (EntityRendererAccessor) renderer.moreleads$getEntityRenderDispatcher().getRenderer(holder);
+            geometry.setLight(entityPos, holderPos, time,
+                    renderer.moreleads$getBlockLightLevel(entity, entityBlockPos),
+                    holderRenderer.moreleads$getBlockLightLevel(holder, holderBlockPos),
+                    entity.level().getBrightness(LightLayer.SKY, entityBlockPos),
+                    entity.level().getBrightness(LightLayer.SKY, holderBlockPos));
+        }
+        cache.update(geometry, holdPos.x, holdPos.y, holdPos.z, attachX, attachY, attachZ);
+
+        VertexConsumer consumer = buffer.getBuffer(RenderType.leash());
+        Matrix4f matrix = poseStack.last().pose();
+        float[] positions = geometry.positions;
+        for (int pair = 0; pair < LeashGeometryCache.VERTEX_PAIRS; ++pair) {
+            float shade = geometry.shades[pair];
+            int light = geometry.lights[pair];
+            int i = pair * 6;
+            consumer.vertex(matrix, positions[i], positions[i + 1], positions[i + 2]).color(0.5F * shade, 0.4F * shade, 0.3F * shade, 1.0F).uv2(light).endVertex();
+            consumer.vertex(matrix, positions[i + 3], positions[i + 4], positions[i + 5]).color(0.5F * shade, 0.4F * shade, 0.3F * shade, 1.0F).uv2(light).endVertex();
+        }
+
+        poseStack.popPose();
+        ci.cancel();
+    }
+}
@@ -0,0 +1,48 @@
+package committee.nova.mods.moreleads.mixin;
+
+import committee.nova.mods.moreleads.common.LeashGroupTransfer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.List;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 16:10
+ * @Description:
+ */
+// Take leashed mobs along through portals, Forge adds a teleporter argument so the target is matched by name only
+@Mixin(ServerPlayer.class)
+abstract class ServerPlayerMixin {
+    @Unique
+    private List<LeashGroupTransfer.Member> moreleads$leashGroup = List.of();
+    @Unique
+    private ServerLevel moreleads$leashOrigin;
+
+    @Inject(method = "changeDimension", at = @At("HEAD"))
+    private void onChangeDimensionHead(CallbackInfoReturnable<Entity> cir) {
+        ServerPlayer self = (ServerPlayer) (Object) this;
+        this.moreleads$leashOrigin = self.serverLevel();
+        this.moreleads$leashGroup = LeashGroupTransfer.collect(self);
+    }
+
+    @Inject(method = "changeDimension", at = @At("RETURN"))
+    private void onChangeDimensionReturn(CallbackInfoReturnable<Entity> cir) {
+        ServerPlayer self = (ServerPlayer) (Object) this;
+        List<LeashGroupTransfer.Member> group = this.moreleads$leashGroup;
+        ServerLevel origin = this.moreleads$leashOrigin;
+        this.moreleads$leashGroup = List.of();
+        this.moreleads$leashOrigin = null;
+        // Leaving the end shows the credits first, the player only respawns later
+        if (!group.isEmpty() && cir.getReturnValue() != null && origin != null && self.serverLevel() != origin) {
+            LeashGroupTransfer.transfer(self, group);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package committee.nova.mods.moreleads.platform.services;
 
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+
 import java.nio.file.Path;
 
 public interface IPlatformHelper {
@@ -28,6 +32,15 @@ public interface IPlatformHelper {
 
     Path getConfigPath();
 
+    /**
+     * Fires the loader's travel to dimension event for an entity this mod moves itself.
+     *
+     * @param entity    The entity about to change dimension.
+     * @param dimension The dimension it goes to.
+     * @return False if a listener cancelled the move.
+     */
+    boolean onTravelToDimension(Entity entity, ResourceKey<Level> dimension);
+
     /**
      * Gets the name of the environment type as a string.
      *
@@ -0,0 +1,240 @@
+package committee.nova.mods.moreleads.trace;
+
+import committee.nova.mods.moreleads.common.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 18:05
+ * @Description: Opt-in recorder keeping the last leash events in a preallocated off-heap ring, so a lag spike can be
+ * dumped and replayed later with {@link LeashTraceReplay}.
+ * <p>
+ * The ring has a single writer, the thread that frames the server tick. Events reported from any other thread,
+ * such as region threads running leash ops the coordinator handed over, are counted as dropped instead of being
+ * written, so a region-threaded server yields an incomplete trace rather than a corrupt one.
+ */
+public class LeashEventRecorder {
+    public static final int MAGIC = 0x4D4C5452; // MLTR
+    public static final short VERSION = 2;
+    public static final int HEADER_BYTES = 4 + 2 + 4;
+    // tick, type, entity, holder, value, mob chunk x/z, holder chunk x/z
+    public static final int RECORD_BYTES = 8 + 1 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+    /**
+     * Largest ring a single direct buffer can hold.
+     */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_BYTES;
+    /**
+     * Ticks to wait after an automatic dump before the next one, so a long lag does not dump every tick.
+     */
+    public static final long SPIKE_DUMP_COOLDOWN = 1200L;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MoreLeads Trace Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Keeps dumps taken within the same millisecond apart
+    private static final AtomicLong DUMPS = new AtomicLong();
+
+    private static LeashEventRecorder instance;
+
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final Path directory;
+    private final long spikeNanos;
+    private final LongSupplier clock;
+    private long written;
+    private long tick;
+    private long tickStart;
+    private int leashes;
+    private volatile Thread owner;
+    private final AtomicLong dropped = new AtomicLong();
+    private long lastDumpTick = -SPIKE_DUMP_COOLDOWN;
+    private CompletableFuture<Path> lastSpikeDump;
+
+    public LeashEventRecorder(int capacity, Path directory, int spikeMillis) {
+        this(capacity, directory, spikeMillis, System::nanoTime);
+    }
+
+    /**
+     * @param clock Nanosecond clock the tick time is measured with.
+     */
+    LeashEventRecorder(int capacity, Path directory, int spikeMillis, LongSupplier clock) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Leash trace capacity must be between 1 and " + MAX_CAPACITY + ", got " + capacity);
+        }
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.directory = directory;
+        this.spikeNanos = spikeMillis * 1_000_000L;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts recording, or stops it when the capacity is not positive.
+     *
+     * @param capacity    How many events the ring holds, clamped to {@link #MAX_CAPACITY}.
+     * @param directory   Where dumps are written.
+     * @param spikeMillis Tick time that triggers a dump, 0 to only dump on command.
+     */
+    public static void init(int capacity, Path directory, int spikeMillis) {
+        init(capacity, directory, spikeMillis, System::nanoTime);
+    }
+
+    static void init(int capacity, Path directory, int spikeMillis, LongSupplier clock) {
+        if (capacity > MAX_CAPACITY) {
+            Constants.LOG.warn("Leash trace capacity {} does not fit in one buffer, recording the last {} events", capacity, MAX_CAPACITY);
+            capacity = MAX_CAPACITY;
+        }
+        instance = capacity > 0 ? new LeashEventRecorder(capacity, directory, spikeMillis, clock) : null;
+    }
+
+    public static LeashEventRecorder get() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Records a leash event. The chunks let a replay tell which region each side of the leash was in.
+     */
+    public static void record(LeashEventType type, int entity, int holder, int value,
+                              int mobChunkX, int mobChunkZ, int holderChunkX, int holderChunkZ) {
+        if (instance != null && instance.claim()) {
+            instance.write(instance.tick, type, entity, holder, value, mobChunkX, mobChunkZ, holderChunkX, holderChunkZ);
+        }
+    }
+
+    public static void countLeash() {
+        if (instance != null && instance.claim()) {
+            instance.leashes++;
+        }
+    }
+
+    public static void startTick(long tick) {
+        if (instance != null) {
+            instance.owner = Thread.currentThread();
+            instance.tick = tick;
+            instance.leashes = 0;
+            instance.tickStart = instance.clock.getAsLong();
+        }
+    }
+
+    public static void endTick() {
+        if (instance != null) {
+            instance.finishTick();
+        }
+    }
+
+    private void finishTick() {
+        long nanos = clock.getAsLong() - tickStart;
+        write(tick, LeashEventType.TICK, leashes, -1, (int) Math.min(Integer.MAX_VALUE, nanos / 1000L), 0, 0, 0, 0);
+        if (spikeNanos > 0 && nanos >= spikeNanos && tick - lastDumpTick >= SPIKE_DUMP_COOLDOWN) {
+            lastDumpTick = tick;
+            int events = size();
+            lastSpikeDump = dump();
+            lastSpikeDump.whenComplete((file, error) -> {
+                if (error != null) {
+                    Constants.LOG.error("Failed to dump leash trace after a {} ms tick", nanos / 1_000_000L, error);
+                } else {
+                    Constants.LOG.info("Dumped {} leash events to {} after a {} ms tick", events, file, nanos / 1_000_000L);
+                }
+            });
+        }
+    }
+
+    private void write(long tick, LeashEventType type, int entity, int holder, int value,
+                       int mobChunkX, int mobChunkZ, int holderChunkX, int holderChunkZ) {
+        int offset = (int) (written % capacity) * RECORD_BYTES;
+        ring.putLong(offset, tick);
+        ring.put(offset + 8, (byte) type.ordinal());
+        ring.putInt(offset + 9, entity);
+        ring.putInt(offset + 13, holder);
+        ring.putInt(offset + 17, value);
+        ring.putInt(offset + 21, mobChunkX);
+        ring.putInt(offset + 25, mobChunkZ);
+        ring.putInt(offset + 29, holderChunkX);
+        ring.putInt(offset + 33, holderChunkZ);
+        written++;
+    }
+
+    // Before the first tick whoever records first is the server thread loading the world
+    private boolean claim() {
+        Thread current = Thread.currentThread();
+        if (owner == null) {
+            owner = current;
+        }
+        if (owner == current) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Gets how many events were reported from threads other than the server thread and not recorded.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the dump the last spike started, or null if no tick was slow enough yet.
+     */
+    public CompletableFuture<Path> getLastSpikeDump() {
+        return lastSpikeDump;
+    }
+
+    public int size() {
+        return (int) Math.min(written, capacity);
+    }
+
+    /**
+     * Copies the recorded events, oldest first, into the trace file format.
+     */
+    public byte[] snapshot() {
+        int count = size();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + count * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putShort(VERSION).putInt(count);
+        int first = (int) ((written - count) % capacity);
+        int head = Math.min(count, capacity - first);
+        out.put(ring.slice(first * RECORD_BYTES, head * RECORD_BYTES));
+        out.put(ring.slice(0, (count - head) * RECORD_BYTES));
+        return out.array();
+    }
+
+    /**
+     * Writes the recorded events to a new file in the dump directory off the server thread. An existing file is
+     * never overwritten, the write fails instead.
+     *
+     * @return The file the trace is written to.
+     */
+    public CompletableFuture<Path> dump() {
+        byte[] data = snapshot();
+        Path file = directory.resolve("leash-" + System.currentTimeMillis() + "-" + DUMPS.incrementAndGet() + ".bin");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Files.createDirectories(directory);
+                Files.write(file, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write leash trace " + file, e);
+            }
+            return file;
+        }, WRITER);
+    }
+}
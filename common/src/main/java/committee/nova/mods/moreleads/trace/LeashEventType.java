@@ -0,0 +1,43 @@
+package committee.nova.mods.moreleads.trace;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 18:05
+ * @Description: Kinds of records in a leash trace, stored by ordinal so only append new ones.
+ */
+public enum LeashEventType {
+    /**
+     * A mob was leashed, entity is the mob and holder the new holder.
+     */
+    ATTACH,
+    /**
+     * A leash was removed on purpose, by a player or a command.
+     */
+    DETACH,
+    /**
+     * A leash snapped, the mob or holder died or they got too far apart.
+     */
+    BREAK,
+    /**
+     * A leash saved with the mob was tied again after loading.
+     */
+    RESTORE,
+    /**
+     * A leashed enderman was kept from teleporting, holder is -1 and the holder chunk is the mob's.
+     */
+    TELEPORT_DENIED,
+    /**
+     * End of a server tick, entity is the number of leashes ticked and value the tick time in microseconds.
+     */
+    TICK;
+
+    private static final LeashEventType[] VALUES = values();
+
+    public static LeashEventType byId(int id) {
+        if (id < 0 || id >= VALUES.length) {
+            throw new IllegalArgumentException("Unknown leash event type " + id);
+        }
+        return VALUES[id];
+    }
+}
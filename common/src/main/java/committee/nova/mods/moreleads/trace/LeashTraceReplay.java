@@ -0,0 +1,135 @@
+package committee.nova.mods.moreleads.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Project: MoreLeads
+ * @Author: cnlimiter
+ * @CreateTime: 2024/10/19 18:05
+ * @Description: Reads a trace dumped by {@link LeashEventRecorder} and feeds it back outside the game, so a recorded
+ * spike can be looked at and turned into a repeatable benchmark.
+ * <p>
+ * Usage: {@code java -cp <common jar> committee.nova.mods.moreleads.trace.LeashTraceReplay <trace>}
+ */
+public class LeashTraceReplay {
+
+    /**
+     * Receives replayed events in recorded order.
+     */
+    public interface Listener {
+        void onEvent(long tick, LeashEventType type, int entity, int holder, int value,
+                     int mobChunkX, int mobChunkZ, int holderChunkX, int holderChunkZ);
+    }
+
+    private final ByteBuffer records;
+    private final int count;
+
+    public LeashTraceReplay(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < LeashEventRecorder.HEADER_BYTES || buffer.getInt() != LeashEventRecorder.MAGIC) {
+            throw new IllegalArgumentException("Not a leash trace");
+        }
+        short version = buffer.getShort();
+        if (version != LeashEventRecorder.VERSION) {
+            throw new IllegalArgumentException("Unsupported leash trace version " + version);
+        }
+        this.count = buffer.getInt();
+        if (buffer.remaining() < (long) count * LeashEventRecorder.RECORD_BYTES) {
+            throw new IllegalArgumentException("Truncated leash trace, expected " + count + " events");
+        }
+        this.records = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static LeashTraceReplay read(Path file) throws IOException {
+        return new LeashTraceReplay(ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void replay(Listener listener) {
+        for (int i = 0; i < count; i++) {
+            int offset = i * LeashEventRecorder.RECORD_BYTES;
+            listener.onEvent(records.getLong(offset), LeashEventType.byId(records.get(offset + 8)),
+                    records.getInt(offset + 9), records.getInt(offset + 13), records.getInt(offset + 17),
+                    records.getInt(offset + 21), records.getInt(offset + 25),
+                    records.getInt(offset + 29), records.getInt(offset + 33));
+        }
+    }
+
+    /**
+     * Rebuilds the leash links the way the server saw them: attach and restore tie a mob, detach and break free it.
+     */
+    public static class LeashGraph implements Listener {
+        private final Map<Integer, Integer> holders = new HashMap<>();
+        private int peakLeashes;
+        private int peakTickLeashes;
+        private int slowestTickMicros;
+        private long slowestTick;
+        private long ticks;
+        private long denials;
+
+        @Override
+        public void onEvent(long tick, LeashEventType type, int entity, int holder, int value,
+                            int mobChunkX, int mobChunkZ, int holderChunkX, int holderChunkZ) {
+            switch (type) {
+                case ATTACH, RESTORE -> attach(entity, holder);
+                case DETACH, BREAK -> drop(entity);
+                case TELEPORT_DENIED -> denials++;
+                case TICK -> tick(tick, entity, value);
+            }
+        }
+
+        public void attach(int entity, int holder) {
+            holders.put(entity, holder);
+            peakLeashes = Math.max(peakLeashes, holders.size());
+        }
+
+        public void drop(int entity) {
+            holders.remove(entity);
+        }
+
+        public int getLeashes() {
+            return holders.size();
+        }
+
+        public Integer getHolder(int entity) {
+            return holders.get(entity);
+        }
+
+        private void tick(long tick, int leashes, int micros) {
+            ticks++;
+            peakTickLeashes = Math.max(peakTickLeashes, leashes);
+            if (micros > slowestTickMicros) {
+                slowestTickMicros = micros;
+                slowestTick = tick;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ticks=" + ticks + ", leashes=" + holders.size() + ", peakLeashes=" + peakLeashes
+                    + ", peakTickLeashes=" + peakTickLeashes + ", teleportDenials=" + denials
+                    + ", slowestTick=" + slowestTick + " (" + slowestTickMicros + "us)";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LeashTraceReplay <trace>");
+            System.exit(1);
+        }
+        LeashTraceReplay trace = read(Paths.get(args[0]));
+        LeashGraph graph = new LeashGraph();
+        trace.replay(graph);
+        System.out.println(trace.size() + " events: " + graph);
+    }
+}
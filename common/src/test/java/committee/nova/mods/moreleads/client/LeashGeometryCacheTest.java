@@ -0,0 +1,164 @@
+package committee.nova.mods.moreleads.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeashGeometryCacheTest {
+
+    @Test
+    void matchesVanillaRope() {
+        double[][] ends = {
+                {3.5, 2.25, -1.75, 0.5, 0.8, 0.5},
+                {-4.0, -1.5, 6.0, 0.2, 0.4, -0.3},
+                {0.0, 5.0, 0.01, 0.0, 0.0, 0.0}
+        };
+        for (double[] end : ends) {
+            LeashGeometryCache cache = new LeashGeometryCache(1 << 20, LeashGeometryCache.EPSILON);
+            LeashGeometryCache.LeashGeometry geometry = rope(cache, 1, end[0], end[1], end[2], end[3], end[4], end[5], 12, 4, 15, 9);
+            List<float[]> expected = vanillaRope(end, 12, 4, 15, 9);
+
+            assertEquals(LeashGeometryCache.VERTEX_PAIRS * 2, expected.size());
+            for (int vertex = 0; vertex < expected.size(); vertex++) {
+                float[] want = expected.get(vertex);
+                int pair = vertex / 2;
+                int i = vertex * 3;
+                assertEquals(want[0], geometry.positions[i], 1.0E-6F, "x of vertex " + vertex);
+                assertEquals(want[1], geometry.positions[i + 1], 1.0E-6F, "y of vertex " + vertex);
+                assertEquals(want[2], geometry.positions[i + 2], 1.0E-6F, "z of vertex " + vertex);
+                assertEquals(want[3], 0.5F * geometry.shades[pair], 1.0E-6F, "red of vertex " + vertex);
+                assertEquals((int) want[4], geometry.lights[pair], "light of vertex " + vertex);
+            }
+        }
+    }
+
+    @Test
+    void sideStripHasHeight() {
+        LeashGeometryCache cache = new LeashGeometryCache(1 << 20, LeashGeometryCache.EPSILON);
+        LeashGeometryCache.LeashGeometry geometry = rope(cache, 1, 4.0, 0.0, 0.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+        int side = (LeashGeometryCache.SEGMENTS + 1) * 6;
+        assertEquals(LeashGeometryCache.ROPE_WIDTH, geometry.positions[side + 4] - geometry.positions[side + 1], 1.0E-6F);
+    }
+
+    @Test
+    void reusesUntilAnEndMoves() {
+        LeashGeometryCache cache = new LeashGeometryCache(1 << 20, 0.01);
+        LeashGeometryCache.LeashGeometry first = rope(cache, 1, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+        int middle = LeashGeometryCache.SEGMENTS / 2 * 6 + 1;
+        float y = first.positions[middle];
+
+        assertSame(first, rope(cache, 1, 3.005, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15));
+        assertEquals(1, cache.getHits());
+        assertEquals(y, first.positions[middle]);
+
+        rope(cache, 1, 3.0, 2.0, 1.0, 0.0, 0.5, 0.0, 15, 15, 15, 15);
+        assertEquals(2, cache.getMisses());
+        assertNotEquals(y, first.positions[middle]);
+
+        rope(cache, 1, 3.0, 2.0, 1.0, 0.0, 0.5, 0.0, 15, 15, 14, 15);
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LeashGeometryCache cache = new LeashGeometryCache(LeashGeometryCache.ENTRY_BYTES * 2, LeashGeometryCache.EPSILON);
+        assertEquals(2, cache.getMaxEntries());
+
+        LeashGeometryCache.LeashGeometry first = rope(cache, 1, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+        rope(cache, 2, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+        rope(cache, 1, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+        rope(cache, 3, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+
+        assertEquals(2, cache.size());
+        assertSame(first, rope(cache, 1, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15));
+        assertEquals(3, cache.getMisses());
+        rope(cache, 2, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0, 15, 15, 15, 15);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    void samplesLightOnlyWhenAnEndChangesBlock() {
+        LeashGeometryCache cache = new LeashGeometryCache(1 << 20, LeashGeometryCache.EPSILON);
+        LeashGeometryCache.LeashGeometry geometry = cache.get(1);
+        assertTrue(geometry.needsLight(10L, 20L, 100L));
+        geometry.setLight(10L, 20L, 100L, 15, 15, 15, 15);
+        cache.update(geometry, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0);
+
+        assertFalse(geometry.needsLight(10L, 20L, 100L + LeashGeometryCache.LIGHT_REFRESH_TICKS - 1));
+        assertTrue(geometry.needsLight(11L, 20L, 101L));
+        assertTrue(geometry.needsLight(10L, 21L, 101L));
+        assertTrue(geometry.needsLight(10L, 20L, 100L + LeashGeometryCache.LIGHT_REFRESH_TICKS));
+        assertTrue(geometry.needsLight(10L, 20L, 99L));
+
+        // Same samples keep the rope, a new value rebuilds it
+        geometry.setLight(10L, 20L, 110L, 15, 15, 15, 15);
+        cache.update(geometry, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0);
+        assertEquals(1, cache.getHits());
+        geometry.setLight(10L, 20L, 120L, 7, 15, 15, 15);
+        cache.update(geometry, 3.0, 2.0, 1.0, 0.0, 0.0, 0.0);
+        assertEquals(2, cache.getMisses());
+        assertEquals(7 << 4 | 15 << 20, geometry.lights[0]);
+    }
+
+    @Test
+    void keepsEveryKeyReachableAcrossEvictions() {
+        LeashGeometryCache cache = new LeashGeometryCache(LeashGeometryCache.ENTRY_BYTES * 100, LeashGeometryCache.EPSILON);
+        LeashGeometryCache.LeashGeometry[] live = new LeashGeometryCache.LeashGeometry[100];
+        for (int key = 0; key < 5000; key++) {
+            live[key % 100] = cache.get(key);
+            if (key % 7 == 0) {
+                cache.invalidate(key - 50);
+            }
+        }
+        assertTrue(cache.size() <= 100);
+        for (int key = 4950; key < 5000; key++) {
+            assertSame(live[key % 100], cache.get(key), "key " + key);
+        }
+    }
+
+    private static LeashGeometryCache.LeashGeometry rope(LeashGeometryCache cache, int key,
+                                                        double holderX, double holderY, double holderZ,
+                                                        double attachX, double attachY, double attachZ,
+                                                        int entityBlock, int holderBlock, int entitySky, int holderSky) {
+        LeashGeometryCache.LeashGeometry geometry = cache.get(key);
+        geometry.setLight(0L, 0L, 0L, entityBlock, holderBlock, entitySky, holderSky);
+        return cache.update(geometry, holderX, holderY, holderZ, attachX, attachY, attachZ);
+    }
+
+    // MobRenderer#renderLeash and MobRenderer#addVertexPair as written in vanilla, one {x, y, z, red, light} per vertex
+    private static List<float[]> vanillaRope(double[] end, int entityBlock, int holderBlock, int entitySky, int holderSky) {
+        float f = (float) (end[0] - end[3]);
+        float f1 = (float) (end[1] - end[4]);
+        float f2 = (float) (end[2] - end[5]);
+        float f4 = 1.0F / (float) Math.sqrt(f * f + f2 * f2) * 0.025F / 2.0F;
+        float f5 = f2 * f4;
+        float f6 = f * f4;
+        List<float[]> vertices = new ArrayList<>();
+        for (int i1 = 0; i1 <= 24; ++i1) {
+            addVertexPair(vertices, f, f1, f2, entityBlock, holderBlock, entitySky, holderSky, 0.025F, 0.025F, f5, f6, i1, false);
+        }
+        for (int j1 = 24; j1 >= 0; --j1) {
+            addVertexPair(vertices, f, f1, f2, entityBlock, holderBlock, entitySky, holderSky, 0.025F, 0.0F, f5, f6, j1, true);
+        }
+        return vertices;
+    }
+
+    private static void addVertexPair(List<float[]> vertices, float dx, float dy, float dz, int entityBlock, int holderBlock,
+                                      int entitySky, int holderSky, float first, float second, float offsetX, float offsetZ,
+                                      int index, boolean reverse) {
+        float f = (float) index / 24.0F;
+        int i = (int) (entityBlock + f * (holderBlock - entityBlock));
+        int j = (int) (entitySky + f * (holderSky - entitySky));
+        int k = i << 4 | j << 20;
+        float f1 = index % 2 == (reverse ? 1 : 0) ? 0.7F : 1.0F;
+        float f2 = 0.5F * f1;
+        float f5 = dx * f;
+        float f6 = dy > 0.0F ? dy * f * f : dy - dy * (1.0F - f) * (1.0F - f);
+        float f7 = dz * f;
+        vertices.add(new float[]{f5 - offsetX, f6 + second, f7 + offsetZ, f2, k});
+        vertices.add(new float[]{f5 + offsetX, f6 + first - second, f7 - offsetZ, f2, k});
+    }
+}
@@ -0,0 +1,248 @@
+package committee.nova.mods.moreleads.coordination;
+
+import committee.nova.mods.moreleads.trace.LeashEventRecorder;
+import committee.nova.mods.moreleads.trace.LeashEventType;
+import committee.nova.mods.moreleads.trace.LeashTraceReplay;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeashCoordinatorTest {
+    private static final Object LEVEL = new Object();
+    private static final int SHIFT = 3;
+
+    @Test
+    void runsEveryOpOnceOnItsOwner() throws Exception {
+        int threads = 4;
+        int opsPerThread = 20_000;
+        LocalRegionScheduler scheduler = new LocalRegionScheduler(threads);
+        List<FakeMob> mobs = new ArrayList<>();
+        for (int region = 0; region < threads * 2; region++) {
+            mobs.add(new FakeMob(region << SHIFT, 0));
+        }
+
+        AtomicIntegerArray runs = new AtomicIntegerArray(threads * opsPerThread);
+        AtomicInteger wrongThread = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger producing = new AtomicInteger(threads);
+        AtomicBoolean failed = new AtomicBoolean();
+
+        LeashCoordinator coordinator = new LeashCoordinator();
+        coordinator.setScheduler(scheduler);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                scheduler.bind(index);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int op = index * opsPerThread + i;
+                        FakeMob mob = mobs.get(random.nextInt(mobs.size()));
+                        Runnable action = () -> {
+                            if (!scheduler.owns(mob.chunkX >> SHIFT)) {
+                                wrongThread.incrementAndGet();
+                            }
+                            runs.incrementAndGet(op);
+                            done.incrementAndGet();
+                        };
+                        if (!coordinator.postIfForeign(mob, FakeMob.LOCATOR, LeashOp.ATTACH, action)) {
+                            action.run();
+                        }
+                        if (i % 64 == 0) {
+                            coordinator.drainOwned();
+                        }
+                    }
+                    producing.decrementAndGet();
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+                    while ((producing.get() > 0 || done.get() < runs.length()) && System.nanoTime() < deadline) {
+                        coordinator.drainOwned();
+                        Thread.yield();
+                    }
+                } catch (Throwable e) {
+                    failed.set(true);
+                    throw e;
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(0, wrongThread.get());
+        for (int op = 0; op < runs.length(); op++) {
+            assertEquals(1, runs.get(op), "runs of op " + op);
+        }
+        assertTrue(coordinator.getPosted(LeashOp.ATTACH) > 0);
+        assertEquals(0, coordinator.getMailboxCount());
+    }
+
+    @Test
+    void followsAMobThatChangedRegion() throws Exception {
+        LocalRegionScheduler scheduler = new LocalRegionScheduler(2);
+        ExecutorService[] regions = {Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor()};
+        LeashCoordinator coordinator = new LeashCoordinator();
+        coordinator.setScheduler(scheduler);
+        try {
+            for (int i = 0; i < regions.length; i++) {
+                int index = i;
+                regions[i].submit(() -> scheduler.bind(index)).get();
+            }
+            FakeMob mob = new FakeMob(0, 0);
+            List<String> ranOn = new ArrayList<>();
+
+            // Posted from a thread owning nothing, into region 0
+            assertTrue(coordinator.postIfForeign(mob, FakeMob.LOCATOR, LeashOp.DROP,
+                    () -> ranOn.add(Thread.currentThread().getName())));
+            // The mob walks into region 1 before region 0 drains
+            mob.chunkX = 1 << SHIFT;
+
+            assertEquals(Integer.valueOf(1), regions[0].submit(() -> coordinator.drain(LEVEL, 0, 0)).get());
+            assertTrue(ranOn.isEmpty());
+            String owner = regions[1].submit(() -> Thread.currentThread().getName()).get();
+            assertEquals(Integer.valueOf(1), regions[1].submit(() -> coordinator.drain(LEVEL, 1, 0)).get());
+            assertEquals(List.of(owner), ranOn);
+        } finally {
+            for (ExecutorService region : regions) {
+                region.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void dropsDrainedMailboxes() {
+        LocalRegionScheduler scheduler = new LocalRegionScheduler(1);
+        LeashCoordinator coordinator = new LeashCoordinator();
+        coordinator.setScheduler(scheduler);
+        AtomicInteger ran = new AtomicInteger();
+        for (int region = 0; region < 1000; region++) {
+            assertTrue(coordinator.postIfForeign(new FakeMob(region << SHIFT, 0), FakeMob.LOCATOR, LeashOp.DROP, ran::incrementAndGet));
+        }
+        assertEquals(1000, coordinator.getMailboxCount());
+
+        scheduler.bind(0);
+        assertEquals(1000, coordinator.drainOwned());
+        assertEquals(1000, ran.get());
+        assertEquals(0, coordinator.getMailboxCount());
+        assertEquals(0, coordinator.drain(LEVEL, 0, 0));
+    }
+
+    @Test
+    void runsDirectlyWithoutAScheduler() {
+        assertFalse(new LeashCoordinator().postIfForeign(new FakeMob(100, 100), FakeMob.LOCATOR, LeashOp.ATTACH, () -> fail("posted")));
+    }
+
+    @Test
+    void handsCrossRegionOpsToTheMobsRegion() throws IOException {
+        LeashEventRecorder.init(64, Files.createTempDirectory("moreleads"), 0);
+        try {
+            LeashEventRecorder.startTick(0);
+            // Same 8x8 region
+            LeashEventRecorder.record(LeashEventType.ATTACH, 1, 100, 0, 1, 1, 2, 2);
+            // Holder one region over
+            LeashEventRecorder.record(LeashEventType.ATTACH, 2, 100, 0, 9, 1, 2, 2);
+            LeashEventRecorder.endTick();
+            LeashEventRecorder.startTick(1);
+            LeashEventRecorder.record(LeashEventType.BREAK, 1, 100, 0, 1, 1, 30, 30);
+            LeashEventRecorder.endTick();
+            LeashTraceReplay trace = new LeashTraceReplay(ByteBuffer.wrap(LeashEventRecorder.get().snapshot()));
+
+            RegionScheduler shared = LeashCoordinator.get().getScheduler();
+            CoordinatedReplay replay = new CoordinatedReplay(3).run(trace);
+            assertSame(shared, LeashCoordinator.get().getScheduler());
+            assertEquals(2, replay.getDirect());
+            assertEquals(1, replay.getHandedOver());
+            assertEquals(1, replay.getGraph().getLeashes());
+            assertEquals(Integer.valueOf(100), replay.getGraph().getHolder(2));
+        } finally {
+            LeashEventRecorder.init(0, null, 0);
+        }
+    }
+
+    @Test
+    void queueKeepsOrder() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Stand-in for a region-threaded server: region x belongs to worker x mod workers, z is ignored.
+     */
+    private static class LocalRegionScheduler implements RegionScheduler {
+        private final int workers;
+        private final ThreadLocal<Integer> worker = new ThreadLocal<>();
+
+        private LocalRegionScheduler(int workers) {
+            this.workers = workers;
+        }
+
+        void bind(int index) {
+            worker.set(index);
+        }
+
+        boolean owns(int regionX) {
+            Integer index = worker.get();
+            return index != null && Math.floorMod(regionX, workers) == index;
+        }
+
+        @Override
+        public int regionShift() {
+            return SHIFT;
+        }
+
+        @Override
+        public boolean isOwnedByCurrentThread(Object level, int regionX, int regionZ) {
+            return owns(regionX);
+        }
+    }
+
+    private static class FakeMob {
+        static final LeashCoordinator.Locator<FakeMob> LOCATOR = new LeashCoordinator.Locator<>() {
+            @Override
+            public Object level(FakeMob target) {
+                return LEVEL;
+            }
+
+            @Override
+            public int chunkX(FakeMob target) {
+                return target.chunkX;
+            }
+
+            @Override
+            public int chunkZ(FakeMob target) {
+                return target.chunkZ;
+            }
+        };
+
+        volatile int chunkX;
+        final int chunkZ;
+
+        FakeMob(int chunkX, int chunkZ) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+    }
+}
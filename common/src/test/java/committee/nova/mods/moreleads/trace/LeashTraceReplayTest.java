@@ -0,0 +1,109 @@
+package committee.nova.mods.moreleads.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeashTraceReplayTest {
+
+    @Test
+    void replaysTheLastEventsInOrder() throws IOException {
+        LeashEventRecorder.init(3, Files.createTempDirectory("moreleads"), 0);
+        try {
+            for (int tick = 0; tick < 3; tick++) {
+                LeashEventRecorder.startTick(tick);
+                LeashEventRecorder.record(LeashEventType.ATTACH, tick, 100, 0, tick, 0, 0, 0);
+                LeashEventRecorder.endTick();
+            }
+            LeashTraceReplay trace = new LeashTraceReplay(ByteBuffer.wrap(LeashEventRecorder.get().snapshot()));
+
+            List<String> events = new ArrayList<>();
+            trace.replay((tick, type, entity, holder, value, mobChunkX, mobChunkZ, holderChunkX, holderChunkZ) ->
+                    events.add(tick + " " + type + " " + entity + " " + mobChunkX));
+            assertEquals(List.of("1 TICK 0 0", "2 ATTACH 2 2", "2 TICK 0 0"), events);
+        } finally {
+            LeashEventRecorder.init(0, null, 0);
+        }
+    }
+
+    @Test
+    void dumpsOnceOnASpike() throws Exception {
+        long[] now = {0L};
+        LeashEventRecorder.init(16, Files.createTempDirectory("moreleads"), 1, () -> now[0]);
+        try {
+            LeashEventRecorder recorder = LeashEventRecorder.get();
+            LeashEventRecorder.startTick(0);
+            now[0] += 500_000L;
+            LeashEventRecorder.endTick();
+            assertNull(recorder.getLastSpikeDump());
+
+            LeashEventRecorder.startTick(1);
+            now[0] += 5_000_000L;
+            LeashEventRecorder.endTick();
+            CompletableFuture<Path> dump = recorder.getLastSpikeDump();
+            assertNotNull(dump);
+            Path file = dump.get(5, TimeUnit.SECONDS);
+            assertEquals(2, LeashTraceReplay.read(file).size());
+
+            // Still cooling down
+            LeashEventRecorder.startTick(LeashEventRecorder.SPIKE_DUMP_COOLDOWN);
+            now[0] += 5_000_000L;
+            LeashEventRecorder.endTick();
+            assertSame(dump, recorder.getLastSpikeDump());
+
+            LeashEventRecorder.startTick(LeashEventRecorder.SPIKE_DUMP_COOLDOWN + 1);
+            now[0] += 5_000_000L;
+            LeashEventRecorder.endTick();
+            assertNotSame(dump, recorder.getLastSpikeDump());
+            assertNotEquals(file, recorder.getLastSpikeDump().get(5, TimeUnit.SECONDS));
+        } finally {
+            LeashEventRecorder.init(0, null, 0);
+        }
+    }
+
+    @Test
+    void neverOverwritesADump() throws Exception {
+        LeashEventRecorder.init(16, Files.createTempDirectory("moreleads"), 0);
+        try {
+            LeashEventRecorder recorder = LeashEventRecorder.get();
+            CompletableFuture<Path> first = recorder.dump();
+            CompletableFuture<Path> second = recorder.dump();
+            assertNotEquals(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertTrue(Files.isRegularFile(first.get()));
+            assertTrue(Files.isRegularFile(second.get()));
+        } finally {
+            LeashEventRecorder.init(0, null, 0);
+        }
+    }
+
+    @Test
+    void dropsEventsFromOtherThreads() throws Exception {
+        LeashEventRecorder.init(16, Files.createTempDirectory("moreleads"), 0);
+        try {
+            LeashEventRecorder.startTick(0);
+            Thread region = new Thread(() -> LeashEventRecorder.record(LeashEventType.ATTACH, 1, 100, 0, 0, 0, 0, 0));
+            region.start();
+            region.join();
+            LeashEventRecorder.record(LeashEventType.ATTACH, 2, 100, 0, 0, 0, 0, 0);
+
+            assertEquals(1, LeashEventRecorder.get().size());
+            assertEquals(1, LeashEventRecorder.get().getDropped());
+        } finally {
+            LeashEventRecorder.init(0, null, 0);
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() {
+        assertThrows(IllegalArgumentException.class, () -> new LeashTraceReplay(ByteBuffer.wrap(new byte[16])));
+    }
+}
@@ -1,13 +1,16 @@
 package committee.nova.mods.moreleads.fabric;
 
 import committee.nova.mods.moreleads.common.Constants;
+import committee.nova.mods.moreleads.common.MoreLeadsCommands;
 import committee.nova.mods.moreleads.common.MoreLeadsCommon;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 
 public class MoreLeadsFabric implements ModInitializer {
     
     @Override
     public void onInitialize() {
         MoreLeadsCommon.init();
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> MoreLeadsCommands.register(dispatcher));
     }
 }
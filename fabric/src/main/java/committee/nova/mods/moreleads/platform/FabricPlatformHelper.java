@@ -2,6 +2,9 @@ package committee.nova.mods.moreleads.platform;
 
 import committee.nova.mods.moreleads.platform.services.IPlatformHelper;
 import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
 
 import java.nio.file.Path;
 
@@ -28,4 +31,10 @@ public class FabricPlatformHelper implements IPlatformHelper {
     public Path getConfigPath() {
         return FabricLoader.getInstance().getConfigDir();
     }
+
+    @Override
+    public boolean onTravelToDimension(Entity entity, ResourceKey<Level> dimension) {
+        // Fabric has no cancellable event before a dimension change
+        return true;
+    }
 }
@@ -1,7 +1,10 @@
 package committee.nova.mods.moreleads.forge;
 
 import committee.nova.mods.moreleads.common.Constants;
+import committee.nova.mods.moreleads.common.MoreLeadsCommands;
 import committee.nova.mods.moreleads.common.MoreLeadsCommon;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.fml.common.Mod;
 
 @Mod(Constants.MOD_ID)
@@ -9,5 +12,10 @@ public class MoreLeadsForge {
     
     public MoreLeadsForge() {
         MoreLeadsCommon.init();
+        MinecraftForge.EVENT_BUS.addListener(this::onRegisterCommands);
+    }
+
+    private void onRegisterCommands(RegisterCommandsEvent event) {
+        MoreLeadsCommands.register(event.getDispatcher());
     }
 }
\ No newline at end of file
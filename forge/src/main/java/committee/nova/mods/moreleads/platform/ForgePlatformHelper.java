@@ -1,6 +1,10 @@
 package committee.nova.mods.moreleads.platform;
 
 import committee.nova.mods.moreleads.platform.services.IPlatformHelper;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.ForgeHooks;
 import net.minecraftforge.fml.ModList;
 import net.minecraftforge.fml.loading.FMLLoader;
 import net.minecraftforge.fml.loading.FMLPaths;
@@ -31,4 +35,9 @@ public class ForgePlatformHelper implements IPlatformHelper {
     public Path getConfigPath() {
         return FMLPaths.CONFIGDIR.get();
     }
+
+    @Override
+    public boolean onTravelToDimension(Entity entity, ResourceKey<Level> dimension) {
+        return ForgeHooks.onTravelToDimension(entity, dimension);
+    }
 }
\ No newline at end of file